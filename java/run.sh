@@ -1,7 +1,8 @@
 #! /bin/bash
 DBNAME=$USER"_DB"
-PORT=$PGPORT
+PORT=${PORT:-$PGPORT}
 USER=$USER
 
 # Example: source ./run.sh
+# For several shards give a port list, e.g. PORT=9999,10000,10001
 java -cp lib/*:bin/ DBproject $DBNAME $PORT $USER
@@ -23,18 +23,81 @@ import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.TreeMap;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.Collections;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
 
 /**
  * This class defines a simple embedded SQL utility class that is designed to
  * work with PostgreSQL JDBC drivers.
  *
+ * The port argument may list several ports (9999,10000,...), one per shard.
+ * Shard i owns every hospital whose hospital_ID mod N equals i, together with
+ * its Department, Doctor, Staff and request_maintenance rows, and the
+ * Appointment, has_appointment, searches and schedules rows of its doctors.
+ * Appointments without a doctor and Patient live on the first (home) shard and
+ * Hospital, which the client never writes, is loaded on every shard, see
+ * sql/shard.sql.  Every write goes to one shard, except booking an open
+ * appointment, which moves it to the doctor's shard.
  */
 
 public class DBproject{//reference to physical database connection
 	private Connection _connection = null;
+	private String _dbname, _dbport, _user, _passwd;//kept to open extra connections to this shard
+	private final List<DBproject> _shards = new ArrayList<DBproject>();//index 0 is this object, the home shard
+	private ExecutorService _pool = null;//runs fan-out queries, only created for more than one shard
+	private final NameIndex _doctorNames = new NameIndex();
+	private final NameIndex _hospitalNames = new NameIndex();
+	private final NameIndex _departmentNames = new NameIndex();
+	private final Map<Integer, Integer> _departmentHospital = new HashMap<Integer, Integer>();//dept_ID to hid, filled by buildNameIndex
+	private AppointmentCounter _apptCounter = null;//buffers Patient.number_of_appts increments when enabled
 	static BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+	static final DateTimeFormatter DATE_INPUT = DateTimeFormatter.ofPattern("M/d/uuuu").withResolverStyle(ResolverStyle.STRICT);
+	static final DateTimeFormatter TIME_INPUT = DateTimeFormatter.ofPattern("H:mm").withResolverStyle(ResolverStyle.STRICT);
+	//Appointment.slot is a tsrange, this renders it back as the adate and time_slot columns users know
+	static final String TIME_SLOT_COLUMN = "to_char(lower(A.slot), 'FMHH24:MI') || '-' || to_char(upper(A.slot), 'FMHH24:MI') AS time_slot";//8:00-10:00 like the data files
+	static final String SLOT_COLUMNS = "lower(A.slot)::date AS adate, " + TIME_SLOT_COLUMN;
 	
 	public DBproject(String dbname, String dbport, String user, String passwd) throws SQLException {
+		String[] ports = dbport.split(",");
+		connect(dbname, ports[0].trim(), user, passwd);
+		for(int i = 1; i < ports.length; i++){
+			DBproject shard = new DBproject();
+			shard.connect(dbname, ports[i].trim(), user, passwd);
+			_shards.add(shard);
+		}//end for
+		if(_shards.size() > 1){
+			_pool = Executors.newFixedThreadPool(_shards.size());
+		}//end if
+	}
+
+	private DBproject() {
+	}
+
+	private void connect(String dbname, String dbport, String user, String passwd) {
+		_dbname = dbname;
+		_dbport = dbport;
+		_user = user;
+		_passwd = passwd;
 		System.out.print("Connecting to database...");
 		try{// constructs the connection URL
 			String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
@@ -46,7 +109,137 @@ public class DBproject{//reference to physical database connection
 	        System.out.println("Make sure you started postgres on this machine");
 	        System.exit(-1);
 		}
+		_shards.add(this);
+	}
+
+	/**
+	 * A piece of work to run against one shard during a fan-out.
+	 */
+	public interface ShardTask<T> {
+		T run(DBproject shard, int index) throws SQLException;
+	}
+
+	/**
+	 * @return the number of shards this object routes to
+	 */
+	public int shardCount() {
+		return _shards.size();
+	}
+
+	/**
+	 * Method to find the shard that owns a hospital.
+	 *
+	 * @param hospitalId the hospital_ID
+	 * @return the shard holding the rows of that hospital
+	 */
+	public DBproject forHospital(int hospitalId) {
+		return _shards.get(Math.floorMod(hospitalId, _shards.size()));
+	}
+
+	/**
+	 * Method to find the shard that owns a department.
+	 *
+	 * @param deptId the dept_ID
+	 * @return the shard holding the department, or null when there is no such department
+	 */
+	public DBproject forDepartment(int deptId) {
+		Integer hid = _departmentHospital.get(deptId);
+		return hid == null ? null : forHospital(hid);
+	}
+
+	/**
+	 * Method to find the shard where a query returns a row, used for ids
+	 * such as doctor_ID or staff_ID that do not carry their hospital.
+	 *
+	 * @param query the probe query string
+	 * @return the first shard with a result, or null when no shard has one
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public DBproject findShard (final String query) throws SQLException {
+		List<Boolean> found = executeOnAllShards((shard, index) -> shard.executeQuery(query) > 0);
+		for(int i = 0; i < found.size(); i++){
+			if(found.get(i)) return _shards.get(i);
+		}//end for
+		return null;
 	}
+
+	/**
+	 * Method to move an appointment that has no doctor yet from this shard to
+	 * the shard of the doctor taking it, together with its searches and
+	 * schedules rows.  The row is locked here first, so two bookings can not
+	 * move it twice.  The target commits before this shard does: a failure in
+	 * between leaves a copy on both shards rather than losing the appointment.
+	 *
+	 * @param apptId the appnt_ID
+	 * @param target the doctor's shard
+	 * @return false when the appointment is not here or already has a doctor
+	 * @throws java.sql.SQLException when the move failed, nothing is changed then
+	 */
+	public boolean moveAppointment (int apptId, DBproject target) throws SQLException {
+		_connection.setAutoCommit(false);
+		target._connection.setAutoCommit(false);
+		try{
+			List<List<String>> appt = executeQueryAndReturnResult("SELECT appnt_ID, slot, status FROM Appointment A WHERE appnt_ID = " + apptId + " AND NOT EXISTS (SELECT 1 FROM has_appointment H WHERE H.appt_id = A.appnt_ID) FOR UPDATE;");
+			if(appt.isEmpty()){
+				_connection.rollback();
+				return false;
+			}//end if
+			List<String> a = appt.get(0);
+			target.executeUpdate("INSERT INTO Appointment (appnt_ID, slot, status) VALUES (" + a.get(0) + ", \'" + a.get(1) + "\', " + (a.get(2) == null ? "NULL" : "\'" + a.get(2) + "\'") + ");");
+			for(List<String> r : executeQueryAndReturnResult("SELECT hid, pid, aid FROM searches WHERE aid = " + apptId + ";"))
+				target.executeUpdate("INSERT INTO searches (hid, pid, aid) VALUES (" + r.get(0) + ", " + r.get(1) + ", " + r.get(2) + ");");
+			for(List<String> r : executeQueryAndReturnResult("SELECT appt_id, staff_id FROM schedules WHERE appt_id = " + apptId + ";"))
+				target.executeUpdate("INSERT INTO schedules (appt_id, staff_id) VALUES (" + r.get(0) + ", " + r.get(1) + ");");
+			executeUpdate("DELETE FROM searches WHERE aid = " + apptId + ";");
+			executeUpdate("DELETE FROM schedules WHERE appt_id = " + apptId + ";");
+			executeUpdate("DELETE FROM Appointment WHERE appnt_ID = " + apptId + ";");
+			target._connection.commit();
+			_connection.commit();
+			return true;
+		}catch(SQLException e){
+			try{ target._connection.rollback(); }catch(SQLException ignored){}
+			try{ _connection.rollback(); }catch(SQLException ignored){}
+			throw e;
+		}finally{
+			target._connection.setAutoCommit(true);
+			_connection.setAutoCommit(true);
+		}//end try
+	}
+
+	/**
+	 * Method to run a task on every shard in parallel.  The results are
+	 * returned in shard order so the caller can merge them.
+	 *
+	 * @param task the work to run on each shard
+	 * @return one result per shard
+	 * @throws java.sql.SQLException when the task failed on any shard
+	 */
+	public <T> List<T> executeOnAllShards (final ShardTask<T> task) throws SQLException {
+		List<T> result = new ArrayList<T>();
+		if(_pool == null){
+			result.add(task.run(this, 0));
+			return result;
+		}//end if
+		List<Future<T>> pending = new ArrayList<Future<T>>();
+		for(int i = 0; i < _shards.size(); i++){
+			final DBproject shard = _shards.get(i);
+			final int index = i;
+			pending.add(_pool.submit(() -> task.run(shard, index)));
+		}//end for
+		try{
+			for(Future<T> f : pending){
+				result.add(f.get());
+			}//end for
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for shards", e);
+		}catch(ExecutionException e){
+			if(e.getCause() instanceof SQLException) throw (SQLException) e.getCause();
+			throw new SQLException(e.getCause());
+		}//end try
+		return result;
+	}
+
 	
 	/**
 	 * Method to execute an update SQL statement.  Update SQL instructions
@@ -170,15 +363,368 @@ public class DBproject{//reference to physical database connection
 	}
 
 	/**
-	 * Method to close the physical connection if it is open.
+	 * Method to print rows gathered from several shards in the same layout as
+	 * executeQueryAndPrintResult.
+	 *
+	 * @param header the column names
+	 * @param rows the merged records
+	 * @return the number of rows printed
+	 */
+	public static int printResult (List<String> header, List<List<String>> rows) {
+		if(!rows.isEmpty()){
+			for(String column : header){
+				System.out.print(column + "\t");
+			}
+			System.out.println();
+		}//end if
+		for(List<String> record : rows){
+			for(String value : record)
+				System.out.print (value + "\t");
+			System.out.println ();
+		}//end for
+		return rows.size();
+	}
+
+	/**
+	 * In-memory lookup from names to ids.  Every distinct name is stored once
+	 * with the ids that carry it.  Names are kept in sorted order for prefix
+	 * search and posted under their trigrams for typo tolerant search.
+	 */
+	static class NameIndex {
+		private final List<String> _names = new ArrayList<String>();//display name by ordinal
+		private final List<String> _keys = new ArrayList<String>();//normalized name by ordinal
+		private final List<List<Integer>> _ids = new ArrayList<List<Integer>>();
+		private final List<Integer> _gramCount = new ArrayList<Integer>();
+		private final Map<String, Integer> _byKey = new HashMap<String, Integer>();
+		private final List<Integer> _sorted = new ArrayList<Integer>();//ordinals ordered by key
+		private final Map<String, List<Integer>> _postings = new HashMap<String, List<Integer>>();
+
+		static String normalize(String name) {
+			return name.trim().replaceAll("\\s+", " ").toLowerCase();
+		}
+
+		static Set<String> trigrams(String key) {
+			String padded = "  " + key + " ";
+			Set<String> grams = new HashSet<String>();
+			for(int i = 0; i + 3 <= padded.length(); i++){
+				grams.add(padded.substring(i, i + 3));
+			}
+			return grams;
+		}
+
+		/**
+		 * Adds one row and keeps the sorted order, names already in the index
+		 * only gain the id.  Use load and sort to fill a large index.
+		 */
+		void add(int id, String name) {
+			Integer ord = put(id, name);
+			if(ord != null) _sorted.add(lowerBound(_keys.get(ord)), ord);
+		}
+
+		/**
+		 * Adds one row without keeping the sorted order, sort must be called
+		 * once all rows are loaded.
+		 */
+		void load(int id, String name) {
+			Integer ord = put(id, name);
+			if(ord != null) _sorted.add(ord);
+		}
+
+		void sort() {
+			Collections.sort(_sorted, (a, b) -> _keys.get(a).compareTo(_keys.get(b)));
+		}
+
+		/**
+		 * @return the ordinal of a new name, or null when the name was already known
+		 */
+		private Integer put(int id, String name) {
+			if(name == null) return null;
+			String key = normalize(name);
+			Integer ord = _byKey.get(key);
+			if(ord != null){
+				if(!_ids.get(ord).contains(id)) _ids.get(ord).add(id);
+				return null;
+			}
+			ord = _names.size();
+			_names.add(name.trim());
+			_keys.add(key);
+			_ids.add(new ArrayList<Integer>(Collections.singletonList(id)));
+			_byKey.put(key, ord);
+			Set<String> grams = trigrams(key);
+			_gramCount.add(grams.size());
+			for(String gram : grams){
+				_postings.computeIfAbsent(gram, g -> new ArrayList<Integer>()).add(ord);
+			}
+			return ord;
+		}
+
+		private int lowerBound(String key) {
+			int lo = 0, hi = _sorted.size();
+			while(lo < hi){
+				int mid = (lo + hi) >>> 1;
+				if(_keys.get(_sorted.get(mid)).compareTo(key) < 0) lo = mid + 1;
+				else hi = mid;
+			}
+			return lo;
+		}
+
+		/**
+		 * @return the ids of the rows named exactly name, ignoring case and spacing
+		 */
+		List<Integer> ids(String name) {
+			Integer ord = _byKey.get(normalize(name));
+			return ord == null ? Collections.<Integer>emptyList() : _ids.get(ord);
+		}
+
+		/**
+		 * @return up to limit names starting with prefix, in alphabetical order
+		 */
+		List<String> prefix(String prefix, int limit) {
+			String key = normalize(prefix);
+			List<String> result = new ArrayList<String>();
+			for(int i = lowerBound(key); i < _sorted.size() && result.size() < limit; i++){
+				int ord = _sorted.get(i);
+				if(!_keys.get(ord).startsWith(key)) break;
+				result.add(_names.get(ord));
+			}
+			return result;
+		}
+
+		/**
+		 * @return up to limit names sharing at least 30% of their trigrams with name, best first
+		 */
+		List<String> fuzzy(String name, int limit) {
+			Set<String> grams = trigrams(normalize(name));
+			final Map<Integer, Integer> shared = new HashMap<Integer, Integer>();
+			for(String gram : grams){
+				List<Integer> posting = _postings.get(gram);
+				if(posting == null) continue;
+				for(int ord : posting){
+					shared.merge(ord, 1, Integer::sum);
+				}
+			}
+			final Map<Integer, Double> score = new HashMap<Integer, Double>();
+			for(Map.Entry<Integer, Integer> e : shared.entrySet()){
+				double similarity = (double) e.getValue() / (grams.size() + _gramCount.get(e.getKey()) - e.getValue());
+				if(similarity >= 0.3) score.put(e.getKey(), similarity);
+			}
+			List<Integer> ords = new ArrayList<Integer>(score.keySet());
+			Collections.sort(ords, (a, b) -> Double.compare(score.get(b), score.get(a)));
+			List<String> result = new ArrayList<String>();
+			for(int i = 0; i < ords.size() && i < limit; i++){
+				result.add(_names.get(ords.get(i)));
+			}
+			return result;
+		}
+
+		/**
+		 * @return prefix matches followed by fuzzy matches, without duplicates
+		 */
+		List<String> suggest(String name, int limit) {
+			List<String> result = prefix(name, limit);
+			for(String candidate : fuzzy(name, limit)){
+				if(result.size() >= limit) break;
+				if(!result.contains(candidate)) result.add(candidate);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Method to load the doctor, hospital and department names into memory.
+	 * Doctors and departments are read from every shard, Hospital is the
+	 * same everywhere so the home shard is enough.
+	 *
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public void buildNameIndex() throws SQLException {
+		for(List<List<String>> rows : executeOnAllShards((shard, index) -> shard.executeQueryAndReturnResult("SELECT doctor_ID, name FROM Doctor;")))
+			for(List<String> record : rows)
+				_doctorNames.load(Integer.parseInt(record.get(0)), record.get(1));
+		for(List<String> record : executeQueryAndReturnResult("SELECT hospital_ID, name FROM Hospital;"))
+			_hospitalNames.load(Integer.parseInt(record.get(0)), record.get(1));
+		for(List<List<String>> rows : executeOnAllShards((shard, index) -> shard.executeQueryAndReturnResult("SELECT dept_ID, name, hid FROM Department;")))
+			for(List<String> record : rows){
+				_departmentNames.load(Integer.parseInt(record.get(0)), record.get(1));
+				_departmentHospital.put(Integer.parseInt(record.get(0)), Integer.parseInt(record.get(2)));
+			}
+		_doctorNames.sort();
+		_hospitalNames.sort();
+		_departmentNames.sort();
+	}
+
+	/**
+	 * Write-behind counter for Patient.number_of_appts.  Bookings add to a
+	 * per-patient LongAdder, the deltas are written as one batched UPDATE
+	 * every flushMillis or once flushSize increments are waiting.
+	 */
+	static class AppointmentCounter {
+		private final DBproject _db;//a connection of its own, the timer thread never shares the menu's connection
+		private final int _flushSize;
+		private final ConcurrentHashMap<Integer, LongAdder> _pending = new ConcurrentHashMap<Integer, LongAdder>();
+		private final AtomicLong _unflushed = new AtomicLong();
+		private final AtomicBoolean _flushQueued = new AtomicBoolean();
+		private final ScheduledExecutorService _timer;
+		private final Thread _shutdownHook = new Thread(this::flushQuietly);
+
+		AppointmentCounter(DBproject db, long flushMillis, int flushSize) {
+			_db = db;
+			_flushSize = flushSize;
+			_timer = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "appointment-counter");
+				t.setDaemon(true);
+				return t;
+			});
+			_timer.scheduleWithFixedDelay(this::flushQuietly, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+			Runtime.getRuntime().addShutdownHook(_shutdownHook);
+		}
+
+		void increment(int patientId) {
+			_pending.computeIfAbsent(patientId, k -> new LongAdder()).increment();
+			if(_unflushed.incrementAndGet() >= _flushSize && _flushQueued.compareAndSet(false, true)){//flush on the timer thread so a failure never reaches the booking
+				_timer.execute(() -> {
+					_flushQueued.set(false);
+					flushQuietly();
+				});
+			}
+		}
+
+		/**
+		 * The caller must hold this counter's monitor until it has read the
+		 * stored value too, otherwise a flush in between is missed or counted twice.
+		 *
+		 * @return the increments of a patient not yet written to the database
+		 */
+		long pending(int patientId) {
+			LongAdder cell = _pending.get(patientId);
+			return cell == null ? 0 : cell.sum();
+		}
+
+		/**
+		 * Writes every waiting delta in one UPDATE on the home shard, which
+		 * holds Patient, so the batch is applied whole or not at all.  On
+		 * failure the deltas are put back so the next flush retries them.
+		 * The monitor is held until the UPDATE has committed.
+		 */
+		synchronized void flush() throws SQLException {
+			Map<Integer, Long> batch = new TreeMap<Integer, Long>();//ascending ids, so concurrent flushes lock rows in the same order
+			long total = 0;
+			for(Map.Entry<Integer, LongAdder> e : _pending.entrySet()){
+				long delta = e.getValue().sumThenReset();
+				if(delta != 0){
+					batch.put(e.getKey(), delta);
+					total += delta;
+				}
+			}
+			if(batch.isEmpty()) return;
+			_unflushed.addAndGet(-total);
+
+			StringBuilder values = new StringBuilder();
+			for(Map.Entry<Integer, Long> e : batch.entrySet()){
+				if(values.length() > 0) values.append(", ");
+				values.append("(").append(e.getKey()).append(", ").append(e.getValue()).append(")");
+			}
+			try{
+				_db.executeUpdate("UPDATE Patient P \nSET number_of_appts = (P.number_of_appts + V.delta) \nFROM (VALUES " + values + ") AS V(pid, delta) \nWHERE P.patient_ID = V.pid;");
+			}catch(SQLException e){
+				for(Map.Entry<Integer, Long> b : batch.entrySet()){
+					_pending.computeIfAbsent(b.getKey(), k -> new LongAdder()).add(b.getValue());
+				}
+				_unflushed.addAndGet(total);
+				throw e;
+			}
+		}
+
+		void flushQuietly() {
+			try{
+				flush();
+			}catch(SQLException e){
+				System.err.println("Error - Unable to save appointment counts: " + e.getMessage());
+			}
+		}
+
+		void close() {
+			_timer.shutdown();
+			try{
+				_timer.awaitTermination(10, TimeUnit.SECONDS);
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+			flushQuietly();
+			try{
+				Runtime.getRuntime().removeShutdownHook(_shutdownHook);
+			}catch(IllegalStateException e){// already shutting down, the hook is running or done
+			}
+			_db.cleanup();
+		}
+	}
+
+	/**
+	 * Method to buffer Patient.number_of_appts increments instead of
+	 * updating the row on every booking.
+	 *
+	 * @param flushMillis how often the buffered increments are written
+	 * @param flushSize how many buffered increments force a write
+	 */
+	public void enableAppointmentCounter(long flushMillis, int flushSize) {
+		DBproject own = new DBproject();
+		own.connect(_dbname, _dbport, _user, _passwd);
+		_apptCounter = new AppointmentCounter(own, flushMillis, flushSize);
+	}
+
+	/**
+	 * Method to add one to a patient's number_of_appts, right away or
+	 * through the appointment counter when it is enabled.
+	 *
+	 * @param patientId the patient_ID
+	 * @throws java.sql.SQLException when update failed
+	 */
+	public void countAppointment(int patientId) throws SQLException {
+		if(_apptCounter == null){
+			executeUpdate("UPDATE Patient \nSET number_of_appts = (number_of_appts + 1) \nwhere patient_ID = \'" + patientId +"\';");
+			return;
+		}//end if
+		_apptCounter.increment(patientId);
+	}
+
+	/**
+	 * Method to print a patient's id, name and number_of_appts.  The count
+	 * includes increments not yet flushed; the counter's monitor is held
+	 * while the query runs so a flush can not land between reading the
+	 * pending delta and reading the stored value.
+	 *
+	 * @param patientId the patient_ID
+	 * @return the number of rows printed
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public int printPatientAppts(int patientId) throws SQLException {
+		if(_apptCounter == null){
+			return executeQueryAndPrintResult("Select P.patient_ID, P.name, P.number_of_appts \nfrom Patient P \nwhere P.patient_ID = " + patientId + ";");
+		}//end if
+		synchronized(_apptCounter){
+			long pending = _apptCounter.pending(patientId);
+			return executeQueryAndPrintResult("Select P.patient_ID, P.name, (P.number_of_appts + " + pending + ") AS number_of_appts \nfrom Patient P \nwhere P.patient_ID = " + patientId + ";");
+		}
+	}
+
+	/**
+	 * Method to close the physical connections if they are open.
 	 */
 	public void cleanup(){
-		try{
-			if (this._connection != null){
-				this._connection.close ();
-			}//end if
-		}catch (SQLException e){// ignored.
-		}//end try
+		if (_apptCounter != null){
+			_apptCounter.close();
+		}//end if
+		if (_pool != null){
+			_pool.shutdown();
+		}//end if
+		for(DBproject shard : _shards){
+			try{
+				if (shard._connection != null){
+					shard._connection.close ();
+				}//end if
+			}catch (SQLException e){// ignored.
+			}//end try
+		}//end for
 	}//end cleanup
 
 	/**
@@ -192,7 +738,7 @@ public class DBproject{//reference to physical database connection
 		if (args.length != 3) {
 			System.err.println (
 				"Usage: " + "java [-classpath <classpath>] " + DBproject.class.getName () +
-		            " <dbname> <port> <user>");
+		            " <dbname> <port>[,<port>...] <user>");
 			return;
 		}//end if
 		
@@ -210,12 +756,31 @@ public class DBproject{//reference to physical database connection
 				return;
 			}
 			
+			long flushMillis = 0;
+			int flushSize = 0;
+			if(System.getProperty("apptFlushMs") != null){// e.g. java -DapptFlushMs=5000 -DapptFlushSize=100 ...
+				try{
+					flushMillis = Long.parseLong(System.getProperty("apptFlushMs").trim());
+					flushSize = Integer.parseInt(System.getProperty("apptFlushSize", "100").trim());
+				}catch(NumberFormatException e){
+					flushMillis = -1;
+				}
+				if(flushMillis <= 0 || flushSize <= 0){
+					System.err.println("Usage: -DapptFlushMs=<milliseconds> [-DapptFlushSize=<increments>], both must be positive whole numbers");
+					return;
+				}//end if
+			}//end if
+
 			System.out.println("(2)");
 			String dbname = args[0];
 			String dbport = args[1];
 			String user = args[2];
 			
 			esql = new DBproject (dbname, dbport, user, "");
+			esql.buildNameIndex();
+			if(flushMillis > 0){
+				esql.enableAppointmentCounter(flushMillis, flushSize);
+			}//end if
 			
 			boolean keepon = true;
 			while(keepon){
@@ -304,6 +869,39 @@ public class DBproject{//reference to physical database connection
 		  throw new IllegalArgumentException("ERROR: The id you input is not in our database, please retry");
    }
 	
+	static List<Integer> resolveName(NameIndex index, String kind, String str) throws Exception { //exact name, else let the user pick a close one
+	  List<Integer> ids = index.ids(str);
+	  if (!ids.isEmpty()) {
+		  return ids;
+	  }
+	  List<String> candidates = index.suggest(str, 10);
+	  if (candidates.isEmpty()) {
+		  throw new IllegalArgumentException("ERROR: There is no " + kind + " named " + str + " in our database, please retry\n");
+	  }
+	  if (candidates.size() == 1) {
+		  System.out.println("\tUsing " + kind + " " + candidates.get(0));
+		  return index.ids(candidates.get(0));
+	  }
+	  System.out.println("\tNo " + kind + " is named " + str + ", did you mean:");
+	  for (int i = 0; i < candidates.size(); i++) {
+		  System.out.println("\t" + (i + 1) + ". " + candidates.get(i));
+	  }
+	  int choice = readChoice();
+	  if (choice < 1 || choice > candidates.size()) {
+		  throw new IllegalArgumentException("ERROR: Please choose one of the listed names\n");
+	  }
+	  return index.ids(candidates.get(choice - 1));
+   }
+
+	static String idList(List<Integer> ids) { //1,2,3 for an IN (...) filter
+	  StringBuilder sb = new StringBuilder();
+	  for (int id : ids) {
+		  if (sb.length() > 0) sb.append(",");
+		  sb.append(id);
+	  }
+	  return sb.toString();
+   }
+
 	static void checkid(String str) throws Exception { //any id
 	  if (!str.matches("^[0-9]*$")) { 
 		  throw new IllegalArgumentException("ERROR: Please enter number for the id\n");
@@ -314,16 +912,35 @@ public class DBproject{//reference to physical database connection
 		  throw new IllegalArgumentException("ERROR: Please enter M for Male, F for female, Other for other.\n");
 	  }
    }
-   static void checkdate(String str) throws Exception { //MM/DD/YEAR
-	  if (!str.matches("[0-9]{1,2}/[0-9]{1,2}/[0-9]{4}")) { 
+   static LocalDate parsedate(String str) throws Exception { //MM/DD/YEAR
+	  try {
+		  return LocalDate.parse(str.trim(), DATE_INPUT);
+	  }catch (DateTimeParseException e) {
 		  throw new IllegalArgumentException("ERROR: Please enter valid date format for MM/DD/YEAR, all is number only.\n");
 	  }
    }
 
-   static void checktime(String str) throws Exception { //00:00-00:00
-	  if (!str.matches("[0-2][0-9]:[0-5][0-9]-[0-2][0-9]:[0-5][0-9]")) { 
+   static String parseslot(LocalDate date, String str) throws Exception { //00:00-00:00, returns a tsrange literal on the given date
+	  String[] part = str.trim().split("-");
+	  LocalTime start, end;
+	  try {
+		  if (part.length != 2) throw new DateTimeParseException(str, str, 0);
+		  start = LocalTime.parse(part[0].trim(), TIME_INPUT);
+		  end = LocalTime.parse(part[1].trim(), TIME_INPUT);
+	  }catch (DateTimeParseException e) {
 		  throw new IllegalArgumentException("ERROR: Please enter valid time slot format for 00:00-00:00, all is number only.\n");
 	  }
+	  if (!start.isBefore(end)) {
+		  throw new IllegalArgumentException("ERROR: The time slot must end after it starts.\n");
+	  }
+	  return "tsrange(\'" + date.atTime(start) + "\', \'" + date.atTime(end) + "\', \'[)\')";
+   }
+
+   static String dayrange(LocalDate first, LocalDate last) throws Exception { //whole days first..last as a tsrange literal
+	  if (first.isAfter(last)) {
+		  throw new IllegalArgumentException("ERROR: The first date must not be after the second date.\n");
+	  }
+	  return "tsrange(\'" + first + "\', \'" + last.plusDays(1) + "\', \'[)\')";
    }
       static void checkStatus(String str) throws Exception { //AC,AV,WL,PA
 	  if (!str.matches("(^AC$)|(^AV$)|(^WL$)|(^PA$)")) { 
@@ -346,13 +963,22 @@ public class DBproject{//reference to physical database connection
 			query += "\'"+ input3 + "\',";
 			System.out.print("\tPlease enter doctor departmentid: ");
 			String input4 = in.readLine();
-			checkid(input1);
+			checkid(input4);
 			query += "\'" + input4 + "\');";
 
-			esql.executeUpdate(query);
+			//the doctor is stored with its department's hospital, ids must stay unique over all shards
+			DBproject shard = esql.forDepartment(Integer.parseInt(input4));
+			if(shard == null){
+				NoExist();
+			}
+			if(esql.findShard("SELECT doctor_ID FROM Doctor WHERE doctor_ID = " + input1 + ";") != null){
+				throw new IllegalArgumentException("ERROR: The doctor id " + input1 + " is already in our database\n");
+			}
+			shard.executeUpdate(query);
+			esql._doctorNames.add(Integer.parseInt(input1), input2);
 			System.out.print("\tYour entered data has successfully update\n");
 			String query2 = "Select * \nFrom Doctor \nWhere doctor_ID = "+ input1 + ";";
-			esql.executeQueryAndPrintResult(query2);
+			shard.executeQueryAndPrintResult(query2);
 		}catch(Exception e) {
 			System.err.println(e.getMessage());
 		}
@@ -395,27 +1021,29 @@ public class DBproject{//reference to physical database connection
 
 	public static void AddAppointment(DBproject esql) {//3.Add Appointment: Ask the user for details of an Appointment and add it to the database.
 		try {
-			String query = "INSERT INTO Appointment (appnt_ID , adate, time_slot, status) VALUES (";
+			String query = "INSERT INTO Appointment (appnt_ID , slot, status) VALUES (";
 			System.out.print("\tPlease enter appointment id: ");			
 			String input11 = in.readLine();
 			checkid(input11);
 			query += "\'"+ input11 + "\',";
 			System.out.print("\tPlease enter appointment date ex:(MM/DD/YYYY): ");	
-			String input12 = in.readLine();
-			checkdate(input12);
-			query += "\'"+ input12 + "\',";
+			LocalDate input12 = parsedate(in.readLine());
 			System.out.print("\tPlease enter appointment time slot ex:(12:00-14:00): ");
 			String input13 = in.readLine();
-			checktime(input13);
-			query += "\'"+ input13 + "\',";
+			query += parseslot(input12, input13) + ",";
 			System.out.print("\tPlease enter appointment status ex:(AC, AV, PA, WL): ");
 			String input14 = in.readLine();
+			checkStatus(input14);
 			query += "\'" + input14 + "\');";
+			DBproject shard = esql;//a new appointment has no doctor yet, so it waits on the home shard until it is booked
+			if(esql.findShard("SELECT appnt_ID FROM Appointment WHERE appnt_ID = " + input11 + ";") != null){
+				throw new IllegalArgumentException("ERROR: The appointment id " + input11 + " is already in our database\n");
+			}
 			
-			esql.executeUpdate(query);
+			shard.executeUpdate(query);
 			System.out.print("\t\nYour entered data has successfully update\n\n");
-			String query2 = "Select * \nFrom Appointment \nWhere appnt_ID = "+ input11 + ";";
-			esql.executeQueryAndPrintResult(query2);	
+			String query2 = "Select A.appnt_ID, " + SLOT_COLUMNS + ", A.status \nFrom Appointment A \nWhere A.appnt_ID = "+ input11 + ";";
+			shard.executeQueryAndPrintResult(query2);	
 		}catch(Exception e) {
 			System.err.println(e.getMessage());
 		}
@@ -480,14 +1108,15 @@ public class DBproject{//reference to physical database connection
 		
 		
 		String did;
+		DBproject doctorShard = esql;//every query about the doctor and the appointment runs on the doctor's shard
 		do {
 			System.out.print("\tPlease enter doctor id for searching his/her appiontment : ");
 			try {
 				did = in.readLine();
 				checkid(did);
 				String dcheck = "select doctor_ID \nfrom Doctor \nwhere doctor_ID = \'" + did +"\' ;";
-				int dd = esql.executeQueryAndPrintResult(dcheck);
-				if(dd == 0){
+				doctorShard = esql.findShard(dcheck);
+				if(doctorShard == null){
 					NoExist();
 				}
 				
@@ -504,9 +1133,18 @@ public class DBproject{//reference to physical database connection
 				aid = in.readLine();
 				checkid(aid);
 				String acheck = "select appnt_ID \nfrom Appointment \nwhere appnt_ID = \'" + aid +"\' ;";
-				int aa = esql.executeQueryAndPrintResult(acheck);
+				int aa = doctorShard.executeQueryAndPrintResult(acheck);
 				if(aa == 0){
-					NoExist();
+					DBproject apptShard = esql.findShard(acheck);
+					if(apptShard == null){
+						NoExist();
+					}
+					//an open appointment waits on the home shard and moves to the shard of the first doctor who takes it
+					if(apptShard != esql || !esql.moveAppointment(Integer.parseInt(aid), doctorShard)){
+						System.err.println("ERROR: Appointment " + aid + " already belongs to a doctor of another hospital.");
+						return;
+					}
+					doctorShard.executeQueryAndPrintResult(acheck);
 				}
 				break;
 			}catch (Exception e) {
@@ -515,38 +1153,46 @@ public class DBproject{//reference to physical database connection
 			}
 		}while(true);
 		String queryAddCheck = "Select * \nfrom has_appointment \nWhere appt_id = \'" + aid + "\' AND doctor_id = \'" + did + "\';";
-		int row1 = esql.executeQueryAndPrintResult(queryAddCheck);
+		int row1 = doctorShard.executeQueryAndPrintResult(queryAddCheck);
 		if(row1 == 0){
 		System.out.print("\t\nYou are makeing a new appiontment for selected doctor and appiontment id for this patient\n");
 		String queryADD = "INSERT INTO has_appointment(appt_id, doctor_id) VALUES (\'" + aid + "\', \'" + did + "\');"; 
-		esql.executeUpdate(queryADD);
+		try{
+			doctorShard.executeUpdate(queryADD);
+		}catch(SQLException e) {
+			if("23P01".equals(e.getSQLState())) { //exclusion_violation on the doctor's slots
+				System.err.println("ERROR: This doctor already has an appointment overlapping that time slot.");
+				return;
+			}
+			throw e;
+		}
 		System.out.print("\t\nYou have successfully made a appiontment for this patient\n");
 		}
-		String query4_1 = "SELECT A.appnt_ID, A.adate, A.time_slot, A.status \nFROM Appointment A\nWHERE A.appnt_ID IN (SELECT appt_id \nFROM has_appointment H \nWHERE H.doctor_id = \'" + did + "\' AND H.appt_id = \'" + aid + "\' );";
+		String query4_1 = "SELECT A.appnt_ID, " + SLOT_COLUMNS + ", A.status \nFROM Appointment A\nWHERE A.appnt_ID IN (SELECT appt_id \nFROM has_appointment H \nWHERE H.doctor_id = \'" + did + "\' AND H.appt_id = \'" + aid + "\' );";
 		System.out.println("\nList of show you chosen appiontment: \n");
 		try{
-			esql.executeQueryAndReturnResult(query4_1);
+			doctorShard.executeQueryAndReturnResult(query4_1);
 		}catch(SQLException e) {
 			System.err.println(e.getMessage());
 		}
 			
 		String query1 = "SELECT A.status \nFROM Appointment A\nWHERE A.appnt_ID IN (SELECT appt_id \nFROM has_appointment H \nWHERE H.doctor_id = \'" + did + "\' AND H.appt_id = \'" + aid + "\' ) AND A.status = \'AV\';";
-		int row2 = esql.executeQueryAndPrintResult(query1);
+		int row2 = doctorShard.executeQueryAndPrintResult(query1);
 		String query2 = "SELECT A.status \nFROM Appointment A\nWHERE A.appnt_ID IN (SELECT appt_id \nFROM has_appointment H \nWHERE H.doctor_id = \'" + did + "\' AND H.appt_id = \'" + aid + "\' ) AND A.status = \'AC\';";
-		int row3 = esql.executeQueryAndPrintResult(query2);
+		int row3 = doctorShard.executeQueryAndPrintResult(query2);
 		String query3 = "SELECT A.status \nFROM Appointment A\nWHERE A.appnt_ID IN (SELECT appt_id \nFROM has_appointment H \nWHERE H.doctor_id = \'" + did + "\' AND H.appt_id = \'" + aid + "\' ) AND A.status = \'WL\';";
-		int row4 = esql.executeQueryAndPrintResult(query3);
+		int row4 = doctorShard.executeQueryAndPrintResult(query3);
 		String query4 = "SELECT A.status \nFROM Appointment A\nWHERE A.appnt_ID IN (SELECT appt_id \nFROM has_appointment H \nWHERE H.doctor_id = \'" + did + "\' AND H.appt_id = \'" + aid + "\' ) AND A.status = \'PA\';";
-		int row5 = esql.executeQueryAndPrintResult(query4);
+		int row5 = doctorShard.executeQueryAndPrintResult(query4);
 		if(row2 !=0){
 
 				String queryAV = "UPDATE Appointment \nSET status = 'AC' \nWHERE appnt_ID = \'" + aid + "\';";
-				String queryAV1 = "UPDATE Patient \nSET number_of_appts = (number_of_appts + 1) \nwhere patient_ID = \'" + pid +"\';";
-				String queryAV2 = "Select P.patient_ID, P.name, A.appnt_ID, A.adate, A.time_slot, A.status, D.doctor_id, D.name \nfrom Patient P, Doctor D, Appointment A \nwhere D.doctor_ID = \'" + did +"\' AND A.appnt_ID = \'" + aid + "\' AND P.patient_ID = \'" + pid +"\';"; 
 				try{
-					esql.executeUpdate(queryAV);
-					esql.executeUpdate(queryAV1);
-					esql.executeQueryAndPrintResult(queryAV2);
+					doctorShard.executeUpdate(queryAV);
+					esql.countAppointment(Integer.parseInt(pid));
+					esql.printPatientAppts(Integer.parseInt(pid));
+					String queryAV2 = "Select A.appnt_ID, " + SLOT_COLUMNS + ", A.status, D.doctor_id, D.name \nfrom Doctor D, Appointment A \nwhere D.doctor_ID = \'" + did +"\' AND A.appnt_ID = \'" + aid +"\';";
+					doctorShard.executeQueryAndPrintResult(queryAV2);
 					}catch(SQLException e) {
 						System.err.println(e.getMessage());
 					}	
@@ -557,12 +1203,12 @@ public class DBproject{//reference to physical database connection
 		
 		 if(row3 !=0){
 				String queryAC = "UPDATE Appointment \nSET status = 'WL' \nWHERE appnt_ID = \'" + aid + "\';";	
-				String queryAC1 = "UPDATE Patient \nSET number_of_appts = (number_of_appts + 1) \nwhere patient_ID = \'" + pid +"\';";
-				String queryAC2 = "Select P.patient_ID, P.name, A.appnt_ID, A.adate, A.time_slot, A.status, D.doctor_id, D.name \nfrom Patient P, Doctor D, Appointment A \nwhere D.doctor_ID = \'" + did +"\' AND A.appnt_ID = \'" + aid +"\' AND P.patient_ID = \'" + pid +"\';"; 
 				try{
-					esql.executeUpdate(queryAC);
-					esql.executeUpdate(queryAC1);
-					esql.executeQueryAndPrintResult(queryAC2);
+					doctorShard.executeUpdate(queryAC);
+					esql.countAppointment(Integer.parseInt(pid));
+					esql.printPatientAppts(Integer.parseInt(pid));
+					String queryAC2 = "Select A.appnt_ID, " + SLOT_COLUMNS + ", A.status, D.doctor_id, D.name \nfrom Doctor D, Appointment A \nwhere D.doctor_ID = \'" + did +"\' AND A.appnt_ID = \'" + aid +"\';";
+					doctorShard.executeQueryAndPrintResult(queryAC2);
 					}catch(SQLException e) {
 						System.err.println(e.getMessage());
 					}	
@@ -573,11 +1219,11 @@ public class DBproject{//reference to physical database connection
 		
 		
 		 if(row4 !=0){
-			String queryWL = "UPDATE Patient \nSET number_of_appts = (number_of_appts + 1) \nwhere patient_ID = \'" + pid +"\';";
-			String queryWL1 = "Select P.patient_ID, P.name, A.appnt_ID, A.adate, A.time_slot, A.status, D.doctor_id, D.name \nfrom Patient P, Doctor D, Appointment A \nwhere D.doctor_ID = \'" + did +"\' AND A.appnt_ID = \'" + aid +"\' AND P.patient_ID = \'" + pid +"\';"; 
 				try{
-					esql.executeUpdate(queryWL);
-					esql.executeQueryAndPrintResult(queryWL1);
+					esql.countAppointment(Integer.parseInt(pid));
+					esql.printPatientAppts(Integer.parseInt(pid));
+					String queryWL1 = "Select A.appnt_ID, " + SLOT_COLUMNS + ", A.status, D.doctor_id, D.name \nfrom Doctor D, Appointment A \nwhere D.doctor_ID = \'" + did +"\' AND A.appnt_ID = \'" + aid +"\';";
+					doctorShard.executeQueryAndPrintResult(queryWL1);
 					}catch(SQLException e) {
 						System.err.println(e.getMessage());
 					}	
@@ -600,21 +1246,22 @@ public class DBproject{//reference to physical database connection
 
 	public static void ListAppointmentsOfDoctor(DBproject esql) {//5 List appointments of a given doctor:
 		try {
-			String query = "SELECT A.appnt_ID, A.adate, A.time_slot, A.status FROM Appointment A, has_appointment H WHERE A.appnt_ID = H.appt_id AND (A.status = \'AC\' OR A.status = \'AV\') AND H.doctor_id = \'";
+			String query = "SELECT A.appnt_ID, " + SLOT_COLUMNS + ", A.status FROM Appointment A, has_appointment H WHERE A.appnt_ID = H.appt_id AND (A.status = \'AC\' OR A.status = \'AV\') AND H.doctor_id = \'";
 			System.out.print("\tPlease enter doctor id: ");
 			String input15 = in.readLine();
+			checkid(input15);
 			query += input15;
-			query += "\' AND (A.adate BETWEEN \'"; 
 			System.out.print("\tPlease enter first date of date range of the appt (MM/DD/YYYY): ");
-			String input16 = in.readLine();
-			checkdate(input16);
-			query += (input16 + "\' AND \'");
+			LocalDate input16 = parsedate(in.readLine());
 			System.out.print("\tPlease enter second date of date range of the appt (MM/DD/YYYY): ");
-			String input17 = in.readLine();
-			checkdate(input17);
-			query += (input17 + "\');");
-						
-			int row = esql.executeQueryAndPrintResult(query);
+			LocalDate input17 = parsedate(in.readLine());
+			query += "\' AND H.slot && " + dayrange(input16, input17) + ";";
+
+			DBproject shard = esql.findShard("SELECT doctor_ID FROM Doctor WHERE doctor_ID = " + input15 + ";");
+			if(shard == null){
+				NoExist();
+			}
+			int row = shard.executeQueryAndPrintResult(query);
 			System.out.println ("total row(s): " + row);
 		}catch(Exception e) {
 			System.err.println(e.getMessage());
@@ -622,17 +1269,20 @@ public class DBproject{//reference to physical database connection
 	}
 	public static void ListAvailableAppointmentsOfDepartment(DBproject esql) {//6 List all available appointments of a given department:
 		try {
-			String query = "SELECT DISTINCT A.appnt_ID, D.name, A.adate, A.time_slot FROM Appointment A, has_appointment H, Doctor D, Department DEPT \nWHERE DEPT.name = \'";
 			System.out.print("\tPlease enter department name: ");
 			String dname = in.readLine();
-			query += dname + "\' ";
 			System.out.print("\tPlease enter the specific date: (MM/DD/YEAR):");
-			String date = in.readLine();
-			checkdate(date);
-			query += " AND A.adate = \'" + date + "\' AND A.status = \'AV\' AND A.appnt_ID = H.appt_id AND H.doctor_id = D.doctor_ID;"; 
+			LocalDate date = parsedate(in.readLine());
+			//the same department name exists in several hospitals, each one is answered by the shard that owns it
+			List<List<String>> rows = new ArrayList<List<String>>();
+			for(int dept : resolveName(esql._departmentNames, "department", dname)){
+				String query = "SELECT DISTINCT A.appnt_ID, D.name, " + SLOT_COLUMNS + " FROM Appointment A, has_appointment H, Doctor D \nWHERE D.did = " + dept;
+				query += " AND A.slot && " + dayrange(date, date) + " AND A.status = \'AV\' AND A.appnt_ID = H.appt_id AND H.doctor_id = D.doctor_ID;"; 
+				rows.addAll(esql.forDepartment(dept).executeQueryAndReturnResult(query));
+			}
 
 			System.out.print("\t\nThe list below is all available appiontment for the Department you entered and the date you select\n: ");
-			int row = esql.executeQueryAndPrintResult(query);
+			int row = printResult(Arrays.asList("appnt_id", "name", "adate", "time_slot"), rows);
 			System.out.println("total row(s): " + row);
 			
 		}catch(Exception e) {
@@ -641,9 +1291,16 @@ public class DBproject{//reference to physical database connection
 	}
 	public static void ListStatusNumberOfAppointmentsPerDoctor(DBproject esql) {//7 List total number of different types of appointments per doctor in descending order
 		try {
-			String query = "SELECT D.doctor_ID, A.status, COUNT(*) AS NAPPNT FROM Appointment A, has_appointment H, Doctor D WHERE A.appnt_ID = H.appt_id AND H.doctor_id = D.doctor_ID GROUP BY D.doctor_ID, A.status ORDER BY NAPPNT DESC";
-			
-			int row = esql.executeQueryAndPrintResult(query);
+			//a doctor and all of its has_appointment rows sit on one shard, so every shard's counts are final
+			List<List<List<String>>> partial = esql.executeOnAllShards((shard, index) -> shard.executeQueryAndReturnResult(
+				"SELECT D.doctor_ID, A.status, COUNT(*) AS NAPPNT FROM Appointment A, has_appointment H, Doctor D WHERE A.appnt_ID = H.appt_id AND H.doctor_id = D.doctor_ID GROUP BY D.doctor_ID, A.status"));
+			List<List<String>> merged = new ArrayList<List<String>>();
+			for(List<List<String>> rows : partial){
+				merged.addAll(rows);
+			}
+			Collections.sort(merged, (a, b) -> Long.compare(Long.parseLong(b.get(2)), Long.parseLong(a.get(2))));
+
+			int row = printResult(Arrays.asList("doctor_id", "status", "nappnt"), merged);
 			System.out.println("total row(s): " + row);
 		}catch(Exception e) {
 			System.err.println(e.getMessage());
@@ -653,14 +1310,19 @@ public class DBproject{//reference to physical database connection
 	public static void FindPatientsCountWithStatus(DBproject esql) {//8 Find total number of patients per doctor with a given status: Given an appointment status, return the number of patients per doctor with the given status.
 		try {
 			System.out.print("\tPlease enter appointment status ex:(AC, AV, PA, WL): ");
-			String input18 = in.readLine();
-			String query = "SELECT H.doctor_id, A.status, COUNT( DISTINCT S.pid ) AS NPATIENT FROM Appointment A, has_appointment H, searches S WHERE S.aid = A.appnt_ID AND A.appnt_ID = H.appt_id GROUP BY H.doctor_id, A.status HAVING A.status = \'";
+			final String input18 = in.readLine();
 			checkStatus(input18);
-			//"SELECT H.doctor_id, COUNT( DISTINCT S.pid ) AS NPATIENT FROM Appointment A, has_appointment H, searches S WHERE S.aid = A.appnt_ID AND A.appnt_ID = H.appt_id GROUP BY H.doctor_id HAVING A.status = '" + input18 + "' ;" ;
-			query += (input18 + "\';");
-			
+			//a doctor's has_appointment rows and the searches of those appointments sit on the doctor's shard,
+			//so each shard's distinct counts are final and the results only need to be put together
+			List<List<List<String>>> partial = esql.executeOnAllShards((shard, index) -> shard.executeQueryAndReturnResult(
+				"SELECT H.doctor_id, A.status, COUNT( DISTINCT S.pid ) AS NPATIENT FROM Appointment A, has_appointment H, searches S WHERE S.aid = A.appnt_ID AND A.appnt_ID = H.appt_id AND A.status = \'" + input18 + "\' GROUP BY H.doctor_id, A.status;"));
+			List<List<String>> merged = new ArrayList<List<String>>();
+			for(List<List<String>> rows : partial){
+				merged.addAll(rows);
+			}
+			Collections.sort(merged, (a, b) -> Integer.compare(Integer.parseInt(a.get(0)), Integer.parseInt(b.get(0))));
 
-			int row = esql.executeQueryAndPrintResult(query);
+			int row = printResult(Arrays.asList("doctor_id", "status", "npatient"), merged);
 			System.out.println("total row(s): " + row);
 		}catch(Exception e) {
 			System.err.println(e.getMessage());
@@ -672,9 +1334,15 @@ public class DBproject{//reference to physical database connection
 			String query = "SELECT patient_per_hour, dept_name, time_slot, did FROM request_maintenance WHERE sid = ";
 			System.out.print("\tPlease enter staff id: ");
 			String input19 = in.readLine();
+			checkid(input19);
 			query += (input19 + ";");
 
-			int row = esql.executeQueryAndPrintResult(query);
+			//the staff id does not say which hospital it works for, look it up and ask only that shard
+			DBproject shard = esql.findShard("SELECT staff_ID FROM Staff WHERE staff_ID = " + input19 + ";");
+			if(shard == null){
+				NoExist();
+			}
+			int row = shard.executeQueryAndPrintResult(query);
 			System.out.println("total row(s): " + row);
 		}catch(Exception e) {
 			System.err.println(e.getMessage());
@@ -683,12 +1351,16 @@ public class DBproject{//reference to physical database connection
 
 	public static void ListRequestsMadebyDoctor(DBproject esql) {//10 Given a doctor name, list all maintenance requests made by the doctor.
 		try {
-			String query = "SELECT R.patient_per_hour, R.dept_name, R.time_slot, R.sid FROM request_maintenance R, Doctor D WHERE R.did = D.doctor_ID AND D.name = \'";
 			System.out.print("\tPlease enter doctor name: ");
 			String input20 = in.readLine();
-			query += (input20 + "\';");
+			final String query = "SELECT R.patient_per_hour, R.dept_name, R.time_slot, R.sid FROM request_maintenance R WHERE R.did IN (" + idList(resolveName(esql._doctorNames, "doctor", input20)) + ");";
 
-			int row = esql.executeQueryAndPrintResult(query);
+			//request_maintenance follows the staff member's hospital, so the doctor's requests can be on any shard
+			List<List<String>> rows = new ArrayList<List<String>>();
+			for(List<List<String>> partial : esql.executeOnAllShards((shard, index) -> shard.executeQueryAndReturnResult(query))){
+				rows.addAll(partial);
+			}
+			int row = printResult(Arrays.asList("patient_per_hour", "dept_name", "time_slot", "sid"), rows);
 			System.out.println("total row(s): " + row);
 		}catch(Exception e) {
 			System.err.println(e.getMessage());
@@ -697,12 +1369,14 @@ public class DBproject{//reference to physical database connection
 
 	public static void DepartmentsOfHospital(DBproject esql) {//11 Given a hospital name, find the specialized departments in the hospital.
 		try {
-			String query = "SELECT D.name FROM Hospital H, Department D WHERE H.hospital_ID = D.hid AND H.name = \'";
 			System.out.print("\tPlease enter hospital name: ");
 			String input21 = in.readLine();
-			query += (input21 + "\';");
+			List<List<String>> rows = new ArrayList<List<String>>();
+			for(int hid : resolveName(esql._hospitalNames, "hospital", input21)){
+				rows.addAll(esql.forHospital(hid).executeQueryAndReturnResult("SELECT D.name FROM Department D WHERE D.hid = " + hid + ";"));
+			}
 
-			int row = esql.executeQueryAndPrintResult(query);
+			int row = printResult(Arrays.asList("name"), rows);
 			System.out.println("total row(s): " + row);
 		}catch(Exception e) {
 			System.err.println(e.getMessage());
@@ -711,12 +1385,17 @@ public class DBproject{//reference to physical database connection
 
 	public static void DetailsOfAppointment(DBproject esql) {//12 Given an appointment number, find the appointment details (time slot, doctor name, department, etc.
 		try {
-			String query = "SELECT D.name, A.time_slot, Dept.name FROM Appointment A, has_appointment H, Doctor D, Department Dept WHERE A.appnt_ID = H.appt_id AND H.doctor_id = D.doctor_ID AND D.did = Dept.dept_ID AND A.appnt_ID = ";
+			String query = "SELECT D.name, " + TIME_SLOT_COLUMN + ", Dept.name FROM Appointment A, has_appointment H, Doctor D, Department Dept WHERE A.appnt_ID = H.appt_id AND H.doctor_id = D.doctor_ID AND D.did = Dept.dept_ID AND A.appnt_ID = ";
 			System.out.print("\tPlease enter appointment id: ");
 			String input22 = in.readLine();
+			checkid(input22);
 			query += (input22 + ";");
 
-			int row = esql.executeQueryAndPrintResult(query);
+			DBproject shard = esql.findShard("SELECT appnt_ID FROM Appointment WHERE appnt_ID = " + input22 + ";");
+			if(shard == null){
+				NoExist();
+			}
+			int row = shard.executeQueryAndPrintResult(query);
 			System.out.println("total row(s): " + row);
 		}catch(Exception e) {
 			System.err.println(e.getMessage());
@@ -0,0 +1,18 @@
+#! /bin/bash
+# Example: ./createShardedDB.sh 9999 10000 10001
+# Every port must be a running postgres instance, the shard number is the position in the list.
+SHARDS=$#
+i=0
+for port in "$@"
+do
+	echo "creating db named ... "$USER"_DB on port "$port" (shard "$i" of "$SHARDS")"
+	createdb -h localhost -p $port $USER"_DB"
+
+	echo "Copying csv files ... "
+	cp ../data/*.csv "$(psql -h localhost -p $port -Atc 'SHOW data_directory' $USER"_DB")"/.
+
+	echo "Initializing tables .. "
+	psql -h localhost -p $port $USER"_DB" < ../sql/create.sql
+	psql -h localhost -p $port -v shard=$i -v shards=$SHARDS $USER"_DB" < ../sql/shard.sql
+	i=$((i+1))
+done
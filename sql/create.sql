@@ -9,6 +9,8 @@ DROP TABLE IF EXISTS request_maintenance CASCADE;--OK
 DROP TABLE IF EXISTS searches CASCADE;--OK
 DROP TABLE IF EXISTS schedules CASCADE;--OK
 
+CREATE EXTENSION IF NOT EXISTS btree_gist; --lets the doctor_id equality share a GiST exclusion with the slot range
+
 
 -------------
 ---DOMAINS---
@@ -71,12 +73,13 @@ CREATE TABLE Doctor
 CREATE TABLE Appointment
 (	
 	appnt_ID INTEGER NOT NULL,	
-	adate DATE NOT NULL,
-	time_slot VARCHAR(11),
+	slot TSRANGE NOT NULL CHECK (NOT isempty(slot) AND NOT lower_inf(slot) AND NOT upper_inf(slot)), --[start, end) of the visit
 	status _STATUS,
 	PRIMARY KEY (appnt_ID)
 );
 
+CREATE INDEX appointment_slot_idx ON Appointment USING gist (slot); --date range lookups for options 5 and 6
+
 
 
 ---------------
@@ -119,11 +122,40 @@ CREATE TABLE has_appointment
 (
 	appt_id INTEGER NOT NULL,
 	doctor_id INTEGER NOT NULL,	
+	slot TSRANGE NOT NULL, --copy of Appointment.slot, kept in sync by the triggers below
 	PRIMARY KEY (appt_id,doctor_id),
 	FOREIGN KEY (appt_id) REFERENCES Appointment(appnt_ID),
-	FOREIGN KEY (doctor_id) REFERENCES Doctor(doctor_ID)
+	FOREIGN KEY (doctor_id) REFERENCES Doctor(doctor_ID),
+	EXCLUDE USING gist (doctor_id WITH =, slot WITH &&) --a doctor can not be double booked
 );
 
+--------------
+---TRIGGERS---
+--------------
+
+CREATE OR REPLACE FUNCTION has_appointment_slot() RETURNS trigger AS $$
+BEGIN
+	SELECT slot INTO NEW.slot FROM Appointment WHERE appnt_ID = NEW.appt_id;
+	RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER has_appointment_slot
+BEFORE INSERT OR UPDATE OF appt_id ON has_appointment
+FOR EACH ROW EXECUTE PROCEDURE has_appointment_slot();
+
+CREATE OR REPLACE FUNCTION appointment_slot_changed() RETURNS trigger AS $$
+BEGIN
+	UPDATE has_appointment SET slot = NEW.slot WHERE appt_id = NEW.appnt_ID;
+	RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER appointment_slot_changed
+AFTER UPDATE OF slot ON Appointment
+FOR EACH ROW WHEN (OLD.slot IS DISTINCT FROM NEW.slot)
+EXECUTE PROCEDURE appointment_slot_changed();
+
 ----------------------------
 -- INSERT DATA STATEMENTS --
 ----------------------------
@@ -176,7 +208,17 @@ FROM 'doctor.csv'
 WITH DELIMITER ',';
 
 
-COPY Appointment (
+--appointment.csv still carries the date and the HH:MI-HH:MI slot as two columns,
+--so it is staged and converted into the typed range.
+CREATE TEMP TABLE appointment_load
+(
+	appnt_ID INTEGER NOT NULL,
+	adate DATE NOT NULL,
+	time_slot VARCHAR(11) NOT NULL,
+	status _STATUS
+);
+
+COPY appointment_load (
 	appnt_ID,
 	adate,
 	time_slot,
@@ -185,6 +227,14 @@ COPY Appointment (
 FROM 'appointment.csv'
 WITH DELIMITER ',';
 
+INSERT INTO Appointment (appnt_ID, slot, status)
+SELECT appnt_ID,
+	tsrange(adate + split_part(time_slot, '-', 1)::time, adate + split_part(time_slot, '-', 2)::time, '[)'),
+	status
+FROM appointment_load;
+
+DROP TABLE appointment_load;
+
 
 COPY request_maintenance (
 	patient_per_hour,
@@ -0,0 +1,58 @@
+-----------------------------
+-- KEEP ONE SHARD'S ROWS ----
+-----------------------------
+-- Run after create.sql on every shard with
+--   psql -v shard=<i> -v shards=<N> ... < shard.sql
+-- Shard i owns the hospitals with mod(hospital_ID, N) = i:
+--   Department, Staff                  by hid
+--   Doctor                             by its department
+--   request_maintenance                by its staff member
+--   Appointment, has_appointment,
+--   searches, schedules                by the appointment's doctor; appointments
+--                                      without a doctor stay on the home shard (0),
+--                                      like the ones the client adds, and move to
+--                                      the doctor's shard when they are booked
+--   Patient                            on the home shard (0) only
+--   Hospital                           on every shard, the client never writes it
+-- searches.hid is deliberately not the routing key: option 8 joins searches with
+-- has_appointment through the appointment and searches.aid references Appointment, so a
+-- search row has to sit next to its appointment.  searches.hid says where the patient
+-- searched, which in the sample data is usually not the hospital of the appointment's doctor.
+-- The references below can point to another shard, so their foreign keys are dropped.
+
+ALTER TABLE searches DROP CONSTRAINT IF EXISTS searches_pid_fkey;
+ALTER TABLE schedules DROP CONSTRAINT IF EXISTS schedules_staff_id_fkey;
+ALTER TABLE request_maintenance DROP CONSTRAINT IF EXISTS request_maintenance_did_fkey;
+
+CREATE TEMP TABLE appointment_owner AS
+SELECT A.appnt_ID,
+	(SELECT MIN(DEPT.hid)
+		FROM has_appointment H, Doctor D, Department DEPT
+		WHERE H.appt_id = A.appnt_ID AND H.doctor_id = D.doctor_ID AND D.did = DEPT.dept_ID) AS hid --NULL without a doctor
+FROM Appointment A;
+
+CREATE TEMP TABLE appointment_elsewhere AS
+SELECT appnt_ID FROM appointment_owner
+WHERE (hid IS NULL AND :shard <> 0) OR mod(hid, :shards) <> :shard;
+
+DELETE FROM searches WHERE aid IN (SELECT appnt_ID FROM appointment_elsewhere);
+
+DELETE FROM schedules WHERE appt_id IN (SELECT appnt_ID FROM appointment_elsewhere);
+
+DELETE FROM has_appointment WHERE appt_id IN (SELECT appnt_ID FROM appointment_elsewhere)
+	OR doctor_id IN (SELECT D.doctor_ID FROM Doctor D, Department DEPT WHERE D.did = DEPT.dept_ID AND mod(DEPT.hid, :shards) <> :shard);
+
+DELETE FROM Appointment WHERE appnt_ID IN (SELECT appnt_ID FROM appointment_elsewhere);
+
+DELETE FROM request_maintenance WHERE sid IN (SELECT staff_ID FROM Staff WHERE mod(hid, :shards) <> :shard);
+
+DELETE FROM Staff WHERE mod(hid, :shards) <> :shard;
+
+DELETE FROM Doctor WHERE did IN (SELECT dept_ID FROM Department WHERE mod(hid, :shards) <> :shard);
+
+DELETE FROM Department WHERE mod(hid, :shards) <> :shard;
+
+DELETE FROM Patient WHERE :shard <> 0;
+
+DROP TABLE appointment_elsewhere;
+DROP TABLE appointment_owner;